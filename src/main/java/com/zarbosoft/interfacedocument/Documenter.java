@@ -8,19 +8,18 @@ import com.zarbosoft.rendaw.common.DeadCode;
 import com.zarbosoft.rendaw.common.Pair;
 import org.reflections.Reflections;
 
-import java.io.IOException;
-import java.io.OutputStream;
-import java.io.UncheckedIOException;
+import java.io.*;
 import java.lang.reflect.Field;
-import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.function.Function;
+import java.util.function.IntFunction;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static com.zarbosoft.rendaw.common.Common.uncheck;
@@ -31,6 +30,22 @@ public class Documenter {
 		LUA
 	}
 
+	public static class Result {
+		public final boolean success;
+
+		/**
+		 * Concrete type sections built, and visits to already documented concrete types that reused the built section
+		 */
+		public final int concreteSectionsBuilt;
+		public final int concreteSectionsReused;
+
+		Result(final boolean success, final int concreteSectionsBuilt, final int concreteSectionsReused) {
+			this.success = success;
+			this.concreteSectionsBuilt = concreteSectionsBuilt;
+			this.concreteSectionsReused = concreteSectionsReused;
+		}
+	}
+
 	public static boolean document(
 			final Reflections reflections,
 			final Map<String, String> descriptions,
@@ -39,30 +54,210 @@ public class Documenter {
 			final String prefix,
 			final Walk.TypeInfo root
 	) {
-		final Map<Type, FluentJSoup.Element> types = new HashMap<>();
-		final FluentJSoup.Element toc = FluentJSoup.div();
-		final List<String> missingDescriptions = new ArrayList<>();
-		final Map<String, String> extraDescriptions = new HashMap<>(descriptions);
-		final Function<String, Stream<FluentJSoup.Node>> getDescription = s -> {
-			String d = extraDescriptions.remove(s);
-			if (d == null)
-				d = descriptions.get(s);
-			if (d == null) {
-				missingDescriptions.add(s);
-				d = "";
+		return document(reflections, descriptions, out, flavor, prefix, root, false).success;
+	}
+
+	/**
+	 * @param strictLinks if true, throw instead of reporting when a link has no matching anchor or the same anchor
+	 *                    name is emitted more than once
+	 */
+	public static Result document(
+			final Reflections reflections,
+			final Map<String, String> descriptions,
+			final Path out,
+			final Flavor flavor,
+			final String prefix,
+			final Walk.TypeInfo root,
+			final boolean strictLinks
+	) {
+		return document(visitor -> Walk.walk(reflections, root, visitor),
+				descriptions,
+				out,
+				flavor,
+				prefix,
+				root,
+				strictLinks,
+				System.out
+		);
+	}
+
+	static Result document(
+			final Function<Walk.Visitor<FluentJSoup.Element>, FluentJSoup.Element> walk,
+			final Map<String, String> descriptions,
+			final Path out,
+			final Flavor flavor,
+			final String prefix,
+			final Walk.TypeInfo root,
+			final boolean strictLinks,
+			final PrintStream report
+	) {
+		final Skeleton skeleton = build(walk, flavor, prefix, root, strictLinks, report);
+		final boolean success = fill(skeleton, descriptions, out, report);
+		report.flush();
+		return new Result(success && skeleton.linksValid, skeleton.concreteBuilt, skeleton.concreteReused);
+	}
+
+	public static Result documentLocales(
+			final Reflections reflections,
+			final Map<Locale, Map<String, String>> descriptions,
+			final Path out,
+			final Flavor flavor,
+			final String prefix,
+			final Walk.TypeInfo root
+	) {
+		return documentLocales(reflections, descriptions, out, flavor, prefix, root, false);
+	}
+
+	/**
+	 * Walks the types once and writes one output tree per locale, in a subdirectory of {@code out} named by the
+	 * locale's language tag.  Missing and extra descriptions are reported per locale.
+	 *
+	 * @param strictLinks see {@link #document(Reflections, Map, Path, Flavor, String, Walk.TypeInfo, boolean)}
+	 */
+	public static Result documentLocales(
+			final Reflections reflections,
+			final Map<Locale, Map<String, String>> descriptions,
+			final Path out,
+			final Flavor flavor,
+			final String prefix,
+			final Walk.TypeInfo root,
+			final boolean strictLinks
+	) {
+		return documentLocales(visitor -> Walk.walk(reflections, root, visitor),
+				descriptions,
+				out,
+				flavor,
+				prefix,
+				root,
+				strictLinks,
+				System.out
+		);
+	}
+
+	static Result documentLocales(
+			final Function<Walk.Visitor<FluentJSoup.Element>, FluentJSoup.Element> walk,
+			final Map<Locale, Map<String, String>> descriptions,
+			final Path out,
+			final Flavor flavor,
+			final String prefix,
+			final Walk.TypeInfo root,
+			final boolean strictLinks,
+			final PrintStream report
+	) {
+		final Skeleton skeleton = build(walk, flavor, prefix, root, strictLinks, report);
+		final Map<Locale, Pair<Boolean, String>> results = descriptions
+				.entrySet()
+				.parallelStream()
+				.collect(Collectors.toMap(Map.Entry::getKey, entry -> {
+					final ByteArrayOutputStream localeReport = new ByteArrayOutputStream();
+					final boolean success;
+					try (
+							PrintStream localeReportStream = new PrintStream(localeReport,
+									true,
+									StandardCharsets.UTF_8.name()
+							)
+					) {
+						success = fill(skeleton,
+								entry.getValue(),
+								out.resolve(entry.getKey().toLanguageTag()),
+								localeReportStream
+						);
+					} catch (final UnsupportedEncodingException e) {
+						throw new AssertionError(e);
+					}
+					return new Pair<>(success, new String(localeReport.toByteArray(), StandardCharsets.UTF_8));
+				}));
+		boolean success = skeleton.linksValid;
+		for (final Locale locale : results
+				.keySet()
+				.stream()
+				.sorted(new ChainComparator<Locale>().lesserFirst(Locale::toLanguageTag).build())
+				.collect(Collectors.toList())) {
+			final Pair<Boolean, String> result = results.get(locale);
+			if (!result.first) {
+				report.format("\n\nLOCALE %s", locale.toLanguageTag());
+				report.print(result.second);
+				success = false;
 			}
-			return transformText(d);
+		}
+		report.flush();
+		return new Result(success, skeleton.concreteBuilt, skeleton.concreteReused);
+	}
+
+	/**
+	 * The locale-independent document.  Descriptions are left as placeholder elements carrying the description key,
+	 * filled per locale by {@link #fill(Skeleton, Map, Path, PrintStream)}.
+	 */
+	private static class Skeleton {
+		final FluentJSoup.Element toc;
+		final FluentJSoup.Element body;
+		final List<String> descriptionKeys;
+		final boolean linksValid;
+
+		/**
+		 * Concrete type sections built, and concrete type visits that reused an already built section
+		 */
+		final int concreteBuilt;
+		final int concreteReused;
+
+		Skeleton(
+				final FluentJSoup.Element toc,
+				final FluentJSoup.Element body,
+				final List<String> descriptionKeys,
+				final boolean linksValid,
+				final int concreteBuilt,
+				final int concreteReused
+		) {
+			this.toc = toc;
+			this.body = body;
+			this.descriptionKeys = descriptionKeys;
+			this.linksValid = linksValid;
+			this.concreteBuilt = concreteBuilt;
+			this.concreteReused = concreteReused;
+		}
+	}
+
+	private static final String DESCRIPTION_ATTR = "data-description";
+
+	private static Skeleton build(
+			final Function<Walk.Visitor<FluentJSoup.Element>, FluentJSoup.Element> walk,
+			final Flavor flavor,
+			final String prefix,
+			final Walk.TypeInfo root,
+			final boolean strictLinks,
+			final PrintStream report
+	) {
+		final TypeRegistry registry = new TypeRegistry();
+		final TypeRegistry.Column<FluentJSoup.Element> sections = new TypeRegistry.Column<>();
+		final FluentJSoup.Element toc = FluentJSoup.div();
+		final List<String> descriptionKeys = new ArrayList<>();
+		final Function<String, FluentJSoup.Node> getDescription = s -> {
+			descriptionKeys.add(s);
+			return FluentJSoup.span().attr(DESCRIPTION_ATTR, s);
+		};
+
+		final Set<String> anchors = new HashSet<>();
+		final Set<String> duplicateAnchors = new HashSet<>();
+		final Set<String> links = new HashSet<>();
+		final IntFunction<String> anchor = id -> {
+			final String name = registry.name(id);
+			if (!anchors.add(name))
+				duplicateAnchors.add(name);
+			return name;
+		};
+		final IntFunction<String> link = id -> {
+			links.add(registry.name(id));
+			return registry.href(id);
 		};
 
-		final Map<Type, List<FluentJSoup.Node>> shortNodes = new HashMap<>();
+		final TypeRegistry.Column<List<FluentJSoup.Node>> shortNodes = new TypeRegistry.Column<>();
 		final Map<String, Integer> shortCounts = new HashMap<>();
-		final Function<Type, FluentJSoup.Node> shorten = type -> {
-			final List<FluentJSoup.Node> list = shortNodes.computeIfAbsent(type, t -> new ArrayList<>());
-			if (list.isEmpty()) {
-				final List<String> splits = Arrays.asList(type.getTypeName().split("\\."));
-				for (int i = 1; i < splits.size(); ++i) {
-					final String key =
-							splits.subList(splits.size() - i, splits.size()).stream().collect(Collectors.joining("."));
+		final IntFunction<FluentJSoup.Node> shorten = id -> {
+			List<FluentJSoup.Node> list = shortNodes.get(id);
+			if (list == null) {
+				list = new ArrayList<>();
+				shortNodes.set(id, list);
+				for (final String key : registry.suffixes(id)) {
 					shortCounts.compute(key, (k2, count) -> (count == null ? 0 : count) + 1);
 				}
 			}
@@ -71,8 +266,14 @@ public class Documenter {
 			return o;
 		};
 
+		// Concrete sections are built once per type; later visits reuse the first
+		final Common.Mutable<Integer> concreteBuilt = new Common.Mutable<>();
+		final Common.Mutable<Integer> concreteReused = new Common.Mutable<>();
+		concreteBuilt.value = 0;
+		concreteReused.value = 0;
+
 		// Build body and toc
-		final FluentJSoup.Element rootElement = Walk.walk(reflections, root, new Walk.Visitor<FluentJSoup.Element>() {
+		final FluentJSoup.Element rootElement = walk.apply(new Walk.Visitor<FluentJSoup.Element>() {
 			public FluentJSoup.Element visitString(final Field field) {
 				return FluentJSoup.span().text("Any string");
 			}
@@ -90,28 +291,26 @@ public class Documenter {
 			}
 
 			public FluentJSoup.Element visitEnum(final Field field, final Class<?> enumClass) {
-				if (!types.containsKey(enumClass)) {
+				final int id = registry.id(enumClass);
+				if (sections.get(id) == null) {
 					final FluentJSoup.Element section = FluentJSoup.div();
-					section.a(a -> a.attr("name", enumClass.getTypeName()));
-					section.h2(h2 -> h2.with(shorten.apply(enumClass)));
-					section.p(p -> p.with(getDescription.apply(enumClass.getCanonicalName())));
+					section.a(a -> a.attr("name", anchor.apply(id)));
+					section.h2(h2 -> h2.with(shorten.apply(id)));
+					section.p(p -> p.with(getDescription.apply(registry.canonicalName(id))));
 					final FluentJSoup.Element values = FluentJSoup.ul();
 					section.with(values);
 					Walk.enumValues(enumClass).stream().forEach(pair -> {
 						final FluentJSoup.Element li =
 								FluentJSoup.li().code(code -> code.text(Walk.decideName(pair.second)));
 						li.span(span -> span.with(getDescription.apply(String.format("%s/%s",
-								enumClass.getCanonicalName(),
+								registry.canonicalName(id),
 								pair.second.getName()
 						))));
 						values.with(li);
 					});
-					types.put(enumClass, section);
+					sections.set(id, section);
 				}
-				return FluentJSoup
-						.a()
-						.attr("href", String.format("#%s", enumClass.getTypeName()))
-						.with(shorten.apply(enumClass));
+				return FluentJSoup.a().attr("href", link.apply(id)).with(shorten.apply(id));
 			}
 
 			public FluentJSoup.Element visitList(final Field field, final FluentJSoup.Element inner) {
@@ -130,27 +329,36 @@ public class Documenter {
 					final Field field, final Class<?> klass, final List<Pair<Class<?>, FluentJSoup.Element>> derived
 			) {
 				final FluentJSoup.Element inner = FluentJSoup.ul();
-				derived.forEach(pair -> {
-					final String name = Walk.decideName(pair.first);
-					inner.li(li -> li.span(String.format("(%s) ", name)).with(pair.second));
-				});
+				derived
+						.stream()
+						.sorted(new ChainComparator<Pair<Class<?>, FluentJSoup.Element>>()
+								.lesserFirst(p -> Walk.decideName(p.first))
+								.lesserFirst(p -> p.first.getTypeName())
+								.build())
+						.forEach(pair -> {
+							final String name = Walk.decideName(pair.first);
+							inner.li(li -> li.span(String.format("(%s) ", name)).with(pair.second));
+						});
 				return FluentJSoup.span().p("Any of (specify type):").with(inner);
 			}
 
 			public FluentJSoup.Element visitConcreteShort(final Field field, final Class<?> klass) {
-				return FluentJSoup
-						.a()
-						.attr("href", String.format("#%s", klass.getTypeName()))
-						.with(shorten.apply(klass));
+				final int id = registry.id(klass);
+				return FluentJSoup.a().attr("href", link.apply(id)).with(shorten.apply(id));
 			}
 
 			public void visitConcrete(
 					final Field field, final Class<?> klass, final List<Pair<Field, FluentJSoup.Element>> fields
 			) {
+				final int id = registry.id(klass);
+				if (sections.get(id) != null) {
+					concreteReused.value += 1;
+					return;
+				}
 				final FluentJSoup.Element section = FluentJSoup.div();
-				section.a(a -> a.attr("name", klass.getTypeName()));
-				section.h2(h2 -> h2.with(shorten.apply(klass)));
-				section.p(p -> p.with(getDescription.apply(klass.getCanonicalName())));
+				section.a(a -> a.attr("name", anchor.apply(id)));
+				section.h2(h2 -> h2.with(shorten.apply(id)));
+				section.p(p -> p.with(getDescription.apply(registry.canonicalName(id))));
 				if (fields.isEmpty()) {
 					section.p("This type has no fields.");
 				} else {
@@ -166,7 +374,7 @@ public class Documenter {
 								final String fieldName = Walk.decideName(f);
 								section.h4(String.format("field: %s", fieldName));
 								section.p(p -> p.with(getDescription.apply(String.format("%s/%s",
-										klass.getCanonicalName(),
+										registry.canonicalName(id),
 										f.getName()
 								))));
 								final FluentJSoup.Element inner = FluentJSoup.table();
@@ -205,7 +413,7 @@ public class Documenter {
 												throw new AssertionError(String.format(
 														"Error formatting string for default value of field [%s] in %s.",
 														f.getName(),
-														klass.getCanonicalName()
+														registry.canonicalName(id)
 												), e);
 											}
 											row.td(td -> td.code(String.format("%s", defaultString)));
@@ -216,7 +424,8 @@ public class Documenter {
 								section.with(inner);
 							});
 				}
-				types.put(klass, section);
+				sections.set(id, section);
+				concreteBuilt.value += 1;
 			}
 
 			@Override
@@ -224,20 +433,6 @@ public class Documenter {
 				return FluentJSoup.span().text("");
 			}
 		});
-		final boolean success;
-		if (!missingDescriptions.isEmpty() || !extraDescriptions.isEmpty()) {
-			System.out.format("\n\nMISSING\n");
-			for (final String error : missingDescriptions) {
-				System.out.format("    %s: \"\",\n", error);
-			}
-			System.out.format("\n\nEXTRA\n");
-			for (final Map.Entry<String, String> entry : extraDescriptions.entrySet()) {
-				System.out.format("%s\n", entry.getKey());
-			}
-			System.out.flush();
-			success = false;
-		} else
-			success = true;
 
 		// Build intro
 		final Stream<FluentJSoup.Node> flavorIntroduction;
@@ -247,7 +442,7 @@ public class Documenter {
 						FluentJSoup
 								.p()
 								.text("This documentation describes the luxem format for ")
-								.code(code -> code.with(shorten.apply(root.type)))
+								.code(code -> code.with(shorten.apply(registry.id(root.type))))
 								.text(".")
 								.text("  For a description of the syntax, see ")
 								.a(a -> a
@@ -268,7 +463,7 @@ public class Documenter {
 						FluentJSoup
 								.p()
 								.text("This documentation describes the Lua configuration for ")
-								.code(code -> code.with(shorten.apply(root.type)))
+								.code(code -> code.with(shorten.apply(registry.id(root.type))))
 								.text("."),
 						FluentJSoup
 								.p()
@@ -296,41 +491,106 @@ public class Documenter {
 				.h2("Document Root")
 				.p("The root element of the document is:")
 				.with(rootElement);
-		if (!types.isEmpty()) {
+		// Ids follow walk order, which follows the unstable Reflections subtype order, so sort on names only.  Types
+		// with equal names also have equal anchors and are reported as duplicates.
+		final List<Integer> typeIds = IntStream
+				.range(0, registry.size())
+				.filter(id -> sections.get(id) != null)
+				.boxed()
+				.sorted(new ChainComparator<Integer>()
+						.lesserFirst(registry::name)
+						.lesserFirst(registry::canonicalName)
+						.build())
+				.collect(Collectors.toList());
+		if (!typeIds.isEmpty()) {
 			body.h1("Types");
-			types
-					.entrySet()
-					.stream()
-					.sorted(new ChainComparator<Map.Entry<Type, FluentJSoup.Element>>()
-							.lesserFirst(o -> o.getKey().getTypeName())
-							.build())
-					.forEach(e -> {
-						toc.div(div -> div.a(a -> a
-								.with(shorten.apply(e.getKey()))
-								.attr("href", String.format("#%s", e.getKey().getTypeName()))));
-						body.with(e.getValue());
-						body.br();
-						body.br();
-					});
+			typeIds.forEach(id -> {
+				toc.div(div -> div.a(a -> a.with(shorten.apply(id)).attr("href", link.apply(id))));
+				body.with(sections.get(id));
+				body.br();
+				body.br();
+			});
 		}
 
+		// Validate links
+		final List<String> danglingLinks =
+				links.stream().filter(name -> !anchors.contains(name)).sorted().collect(Collectors.toList());
+		final boolean linksValid;
+		if (!danglingLinks.isEmpty() || !duplicateAnchors.isEmpty()) {
+			if (strictLinks)
+				throw new IllegalStateException(String.format("Dangling links %s, duplicate anchors %s.",
+						danglingLinks,
+						duplicateAnchors.stream().sorted().collect(Collectors.toList())
+				));
+			report.format("\n\nDANGLING\n");
+			for (final String name : danglingLinks) {
+				report.format("%s\n", name);
+			}
+			report.format("\n\nDUPLICATE\n");
+			duplicateAnchors.stream().sorted().forEach(name -> report.format("%s\n", name));
+			report.flush();
+			linksValid = false;
+		} else
+			linksValid = true;
+
 		// Resolve short names
-		for (final Map.Entry<Type, List<FluentJSoup.Node>> type : shortNodes.entrySet()) {
-			final List<String> splits = Arrays.asList(type.getKey().getTypeName().split("\\."));
-			boolean set = false;
-			for (int i = 1; i < splits.size(); ++i) {
-				final String key =
-						splits.subList(splits.size() - i, splits.size()).stream().collect(Collectors.joining("."));
+		for (int id = 0; id < registry.size(); ++id) {
+			final List<FluentJSoup.Node> nodes = shortNodes.get(id);
+			if (nodes == null)
+				continue;
+			String shortName = registry.name(id);
+			for (final String key : registry.suffixes(id)) {
 				if (shortCounts.get(key) > 1)
 					continue;
-				type.getValue().forEach(v -> v.setText(key));
-				set = true;
+				shortName = key;
 				break;
 			}
-			if (!set)
-				type.getValue().forEach(v -> v.setText(type.getKey().getTypeName()));
+			final String finalShortName = shortName;
+			nodes.forEach(v -> v.setText(finalShortName));
 		}
 
+		return new Skeleton(toc, body, descriptionKeys, linksValid, concreteBuilt.value, concreteReused.value);
+	}
+
+	/**
+	 * Fills a copy of the skeleton with descriptions and writes it to {@code out}.
+	 *
+	 * @return false if descriptions were missing or unused, in which case they are listed in {@code report}
+	 */
+	private static boolean fill(
+			final Skeleton skeleton, final Map<String, String> descriptions, final Path out, final PrintStream report
+	) {
+		// Rendering reparents the rendered element, so locales filled in parallel each need their own copy
+		final FluentJSoup.Element toc = skeleton.toc.copy();
+		final FluentJSoup.Element body = skeleton.body.copy();
+		body.select(String.format("[%s]", DESCRIPTION_ATTR)).forEach(placeholder -> {
+			final String d = descriptions.get(placeholder.attr(DESCRIPTION_ATTR));
+			placeholder.with(transformText(d == null ? "" : d));
+			placeholder.unwrap();
+		});
+
+		final List<String> missingDescriptions = skeleton.descriptionKeys
+				.stream()
+				.filter(k -> descriptions.get(k) == null)
+				.sorted()
+				.collect(Collectors.toList());
+		final Set<String> used = new HashSet<>(skeleton.descriptionKeys);
+		final List<String> extraDescriptions =
+				descriptions.keySet().stream().filter(k -> !used.contains(k)).sorted().collect(Collectors.toList());
+		final boolean success;
+		if (!missingDescriptions.isEmpty() || !extraDescriptions.isEmpty()) {
+			report.format("\n\nMISSING\n");
+			for (final String error : missingDescriptions) {
+				report.format("    %s: \"\",\n", error);
+			}
+			report.format("\n\nEXTRA\n");
+			for (final String key : extraDescriptions) {
+				report.format("%s\n", key);
+			}
+			success = false;
+		} else
+			success = true;
+
 		try {
 			Files.createDirectories(out);
 			try (
@@ -362,7 +622,7 @@ public class Documenter {
 		final ImmutableList.Builder<FluentJSoup.Node> builder = ImmutableList.builder();
 		for (int i = 0; i < codes.length; ++i) {
 			if (i % 2 == 0) {
-				final String[] lines = codes[i].split("\n");
+				final String[] lines = codes[i].split("\r\n|\r|\n");
 				for (int j = 0; j < lines.length; ++j) {
 					if (j > 0)
 						builder.add(FluentJSoup.br());
@@ -380,7 +640,7 @@ public class Documenter {
 			out.write(".. raw:: html\n\n".getBytes(StandardCharsets.UTF_8));
 			out.write(Pattern
 					.compile("^", Pattern.MULTILINE)
-					.matcher(body.render(4))
+					.matcher(body.render(4).replaceAll("\r\n|\r", "\n"))
 					.replaceAll("    ")
 					.getBytes(StandardCharsets.UTF_8));
 		});
@@ -1,8 +1,10 @@
 package com.zarbosoft.interfacedocument;
 
 import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Entities;
 import org.jsoup.nodes.TextNode;
 
+import java.nio.charset.StandardCharsets;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
 
@@ -33,24 +35,46 @@ public class FluentJSoup {
 			this.element = element;
 		}
 
-		public String render(final int indent) {
+		private Document renderDocument() {
 			final Document document = element instanceof Document ? (Document) element : new Document("");
+			document.outputSettings().charset(StandardCharsets.UTF_8).escapeMode(Entities.EscapeMode.base);
+			return document;
+		}
+
+		public String render(final int indent) {
+			final Document document = renderDocument();
 			document.outputSettings().prettyPrint(true).indentAmount(indent);
 			document.appendChild(element);
 			return element.html();
 		}
 
 		public String render() {
-			final Document document = element instanceof Document ? (Document) element : new Document("");
+			final Document document = renderDocument();
 			document.appendChild(element);
 			return element.html();
 		}
 
+		public Element copy() {
+			return new Element(element.clone());
+		}
+
+		public Stream<Element> select(final String query) {
+			return element.select(query).stream().map(Element::new);
+		}
+
+		public void unwrap() {
+			element.unwrap();
+		}
+
 		public Element text(final String text) {
 			element.appendText(text);
 			return this;
 		}
 
+		public String attr(final String name) {
+			return element.attr(name);
+		}
+
 		public Element attr(final String name, final String value) {
 			element.attr(name, value);
 			return this;
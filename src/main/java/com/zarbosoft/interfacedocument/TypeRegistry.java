@@ -0,0 +1,77 @@
+package com.zarbosoft.interfacedocument;
+
+import java.lang.reflect.Type;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Assigns each type a dense integer id and interns the names derived from it, so per-type state can live in
+ * id-indexed columns rather than maps keyed by type.
+ */
+class TypeRegistry {
+	private final Map<Type, Integer> ids = new HashMap<>();
+	private final List<String> names = new ArrayList<>();
+	private final List<String> canonicalNames = new ArrayList<>();
+	private final List<String> hrefs = new ArrayList<>();
+	private final List<List<String>> suffixes = new ArrayList<>();
+
+	static class Column<T> {
+		private final ArrayList<T> values = new ArrayList<>();
+
+		public T get(final int id) {
+			return id < values.size() ? values.get(id) : null;
+		}
+
+		public void set(final int id, final T value) {
+			while (values.size() <= id)
+				values.add(null);
+			values.set(id, value);
+		}
+	}
+
+	public int id(final Type type) {
+		final Integer found = ids.get(type);
+		if (found != null)
+			return found;
+		final int id = names.size();
+		ids.put(type, id);
+		final String name = type.getTypeName();
+		names.add(name);
+		final String canonicalName = type instanceof Class ? ((Class<?>) type).getCanonicalName() : null;
+		canonicalNames.add(canonicalName == null ? name : canonicalName);
+		hrefs.add(String.format("#%s", name));
+		final List<String> splits = Arrays.asList(name.split("\\."));
+		final List<String> typeSuffixes = new ArrayList<>();
+		for (int i = 1; i < splits.size(); ++i) {
+			typeSuffixes.add(splits.subList(splits.size() - i, splits.size()).stream().collect(Collectors.joining(".")));
+		}
+		suffixes.add(typeSuffixes);
+		return id;
+	}
+
+	public int size() {
+		return names.size();
+	}
+
+	/**
+	 * @return the type name, also used as the type's anchor
+	 */
+	public String name(final int id) {
+		return names.get(id);
+	}
+
+	public String canonicalName(final int id) {
+		return canonicalNames.get(id);
+	}
+
+	public String href(final int id) {
+		return hrefs.get(id);
+	}
+
+	/**
+	 * @return trailing dotted segments of the name, shortest first, excluding the full name
+	 */
+	public List<String> suffixes(final int id) {
+		return suffixes.get(id);
+	}
+}
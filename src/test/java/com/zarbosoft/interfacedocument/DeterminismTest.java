@@ -0,0 +1,146 @@
+package com.zarbosoft.interfacedocument;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.zarbosoft.interface1.Configuration;
+import com.zarbosoft.interface1.Walk;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reflections.Reflections;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class DeterminismTest {
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Configuration
+	public static class Root {
+		@Configuration
+		public String name;
+
+		@Configuration(optional = true)
+		public int count = 4;
+
+		@Configuration(optional = true)
+		public Color color = Color.GREEN;
+
+		@Configuration
+		public List<Shape> shapes = new ArrayList<>();
+
+		@Configuration(optional = true)
+		public Circle favorite;
+	}
+
+	@Configuration
+	public enum Color {
+		@Configuration
+		RED,
+		@Configuration
+		GREEN,
+		@Configuration
+		BLUE
+	}
+
+	@Configuration
+	public abstract static class Shape {
+		@Configuration(optional = true)
+		public Color color = Color.RED;
+	}
+
+	@Configuration(name = "circle")
+	public static class Circle extends Shape {
+		@Configuration(optional = true)
+		public double radius = 1;
+	}
+
+	@Configuration(name = "square")
+	public static class Square extends Shape {
+		@Configuration
+		public double side;
+	}
+
+	@Configuration(name = "triangle")
+	public static class Triangle extends Shape {
+		@Configuration
+		public List<Circle> corners = new ArrayList<>();
+	}
+
+	@Configuration(name = "polygon")
+	public static class Polygon extends Shape {
+		@Configuration(optional = true)
+		public int sides = 5;
+
+		@Configuration(optional = true)
+		public boolean regular = true;
+	}
+
+	/**
+	 * Generates the fixture documentation into the directory given as the only argument.  Missing and extra
+	 * descriptions are deliberate so the reports are part of the compared output.
+	 */
+	public static void main(final String[] args) {
+		Documenter.document(
+				new Reflections("com.zarbosoft.interfacedocument"),
+				ImmutableMap.<String, String>builder()
+						.put("com.zarbosoft.interfacedocument.DeterminismTest.Root", "The document root.")
+						.put("com.zarbosoft.interfacedocument.DeterminismTest.Root/name", "A `name`.\r\nSecond line.")
+						.put("com.zarbosoft.interfacedocument.DeterminismTest.Circle", "A circle.")
+						.put("com.zarbosoft.interfacedocument.DeterminismTest.Color/BLUE", "Blue.")
+						.put("com.zarbosoft.interfacedocument.DeterminismTest.Unused", "Not a type.")
+						.put("com.zarbosoft.interfacedocument.DeterminismTest.Root/unused", "Not a field.")
+						.build(),
+				Paths.get(args[0]),
+				Documenter.Flavor.LUXEM,
+				"",
+				new Walk.TypeInfo(Root.class)
+		);
+	}
+
+	/**
+	 * Runs {@link #main} in a separate JVM, so the Reflections scan and identity hash codes are fresh.
+	 *
+	 * @return the combined stdout and stderr of the run
+	 */
+	private static String generate(final Path out, final List<String> jvmOptions) throws Exception {
+		final List<String> command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.addAll(jvmOptions);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(DeterminismTest.class.getName());
+		command.add(out.toString());
+		final Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		final String output;
+		try (InputStream stream = process.getInputStream()) {
+			output = new String(ByteStreams.toByteArray(stream), StandardCharsets.UTF_8);
+		}
+		assertEquals(output, 0, process.waitFor());
+		return output;
+	}
+
+	@Test
+	public void identicalAcrossJvms() throws Exception {
+		final Path first = temporaryFolder.newFolder("first").toPath();
+		final Path second = temporaryFolder.newFolder("second").toPath();
+		final String firstReport = generate(first, ImmutableList.of());
+		// Constant identity hash codes, so hash-ordered iteration differs from the first run
+		final String secondReport =
+				generate(second, ImmutableList.of("-XX:+UnlockExperimentalVMOptions", "-XX:hashCode=2"));
+		for (final String name : ImmutableList.of("_Sidebar.rst", "Syntax-Reference.rst")) {
+			assertArrayEquals(name, Files.readAllBytes(first.resolve(name)), Files.readAllBytes(second.resolve(name)));
+		}
+		assertEquals(firstReport, secondReport);
+	}
+}
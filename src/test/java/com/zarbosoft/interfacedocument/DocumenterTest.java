@@ -0,0 +1,256 @@
+package com.zarbosoft.interfacedocument;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.zarbosoft.interface1.Configuration;
+import com.zarbosoft.interface1.Walk;
+import com.zarbosoft.rendaw.common.Pair;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.zarbosoft.rendaw.common.Common.uncheck;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives the documenter with a scripted walk, so the order and number of visits are fixed by the test rather than
+ * by {@link Walk}.
+ */
+public class DocumenterTest {
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Configuration
+	public static class Leaf {
+		@Configuration(optional = true)
+		public int size = 3;
+	}
+
+	@Configuration
+	public enum Color {
+		@Configuration
+		RED,
+		@Configuration
+		GREEN
+	}
+
+	@Configuration
+	public static class Root {
+		@Configuration
+		public Leaf first;
+
+		@Configuration(optional = true)
+		public Leaf second;
+
+		@Configuration(optional = true)
+		public Color color = Color.GREEN;
+	}
+
+	private static final Walk.TypeInfo root = new Walk.TypeInfo(Root.class);
+
+	private static Field field(final Class<?> klass, final String name) {
+		return uncheck(() -> klass.getField(name));
+	}
+
+	/**
+	 * Visits {@link Leaf} once per {@link Root} field that holds one, as the walk does for shared types.
+	 */
+	private static FluentJSoup.Element walkFixture(final Walk.Visitor<FluentJSoup.Element> visitor) {
+		final Field size = field(Leaf.class, "size");
+		final Field first = field(Root.class, "first");
+		final Field second = field(Root.class, "second");
+		final Field color = field(Root.class, "color");
+		for (final Field leafField : ImmutableList.of(first, second)) {
+			visitor.visitConcrete(leafField,
+					Leaf.class,
+					ImmutableList.<Pair<Field, FluentJSoup.Element>>of(new Pair<>(size, visitor.visitInteger(size)))
+			);
+		}
+		visitor.visitConcrete(null,
+				Root.class,
+				ImmutableList.<Pair<Field, FluentJSoup.Element>>of(
+						new Pair<>(first, visitor.visitConcreteShort(first, Leaf.class)),
+						new Pair<>(second, visitor.visitConcreteShort(second, Leaf.class)),
+						new Pair<>(color, visitor.visitEnum(color, Color.class))
+				)
+		);
+		return visitor.visitConcreteShort(null, Root.class);
+	}
+
+	private static final Map<String, String> descriptions = ImmutableMap
+			.<String, String>builder()
+			.put("com.zarbosoft.interfacedocument.DocumenterTest.Leaf", "A leaf.")
+			.put("com.zarbosoft.interfacedocument.DocumenterTest.Leaf/size", "How big, in `units`.")
+			.put("com.zarbosoft.interfacedocument.DocumenterTest.Root", "The root.\nSecond line.")
+			.put("com.zarbosoft.interfacedocument.DocumenterTest.Root/first", "The first leaf.")
+			.put("com.zarbosoft.interfacedocument.DocumenterTest.Root/second", "The second leaf.")
+			.put("com.zarbosoft.interfacedocument.DocumenterTest.Root/color", "A color.")
+			.put("com.zarbosoft.interfacedocument.DocumenterTest.Color", "Colors.")
+			.put("com.zarbosoft.interfacedocument.DocumenterTest.Color/RED", "Red.")
+			.put("com.zarbosoft.interfacedocument.DocumenterTest.Color/GREEN", "Green.")
+			.build();
+
+	private static class Run {
+		final Documenter.Result result;
+		final String report;
+
+		Run(final Documenter.Result result, final String report) {
+			this.result = result;
+			this.report = report;
+		}
+	}
+
+	private static Run capture(final Function<PrintStream, Documenter.Result> run) throws Exception {
+		final ByteArrayOutputStream report = new ByteArrayOutputStream();
+		final Documenter.Result result;
+		try (PrintStream reportStream = new PrintStream(report, true, StandardCharsets.UTF_8.name())) {
+			result = run.apply(reportStream);
+		}
+		return new Run(result, new String(report.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	private static String read(final Path path) throws Exception {
+		return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+	}
+
+	private static int count(final String text, final String needle) {
+		final Matcher matcher = Pattern.compile(Pattern.quote(needle)).matcher(text);
+		int count = 0;
+		while (matcher.find())
+			count += 1;
+		return count;
+	}
+
+	@Test
+	public void sharedConcreteSectionBuiltOnce() throws Exception {
+		final Path out = temporaryFolder.newFolder().toPath();
+		final Run run = capture(report -> Documenter.document(DocumenterTest::walkFixture,
+				descriptions,
+				out,
+				Documenter.Flavor.LUXEM,
+				"",
+				root,
+				false,
+				report
+		));
+		assertEquals(run.report, true, run.result.success);
+		// Leaf and Root; the second Leaf visit reuses the first section
+		assertEquals(2, run.result.concreteSectionsBuilt);
+		assertEquals(1, run.result.concreteSectionsReused);
+		assertEquals(1,
+				count(read(out.resolve("Syntax-Reference.rst")),
+						String.format("name=\"%s\"", Leaf.class.getTypeName())
+				)
+		);
+	}
+
+	/**
+	 * Links to {@link Leaf} without ever visiting it concretely, so it has no section or anchor.
+	 */
+	private static FluentJSoup.Element walkDangling(final Walk.Visitor<FluentJSoup.Element> visitor) {
+		final Field first = field(Root.class, "first");
+		visitor.visitConcrete(null,
+				Root.class,
+				ImmutableList.<Pair<Field, FluentJSoup.Element>>of(new Pair<>(first,
+						visitor.visitConcreteShort(first, Leaf.class)
+				))
+		);
+		return visitor.visitConcreteShort(null, Root.class);
+	}
+
+	@Test
+	public void danglingLinkReported() throws Exception {
+		final Path out = temporaryFolder.newFolder().toPath();
+		final Run run = capture(report -> Documenter.document(DocumenterTest::walkDangling,
+				ImmutableMap.of(
+						"com.zarbosoft.interfacedocument.DocumenterTest.Root",
+						"The root.",
+						"com.zarbosoft.interfacedocument.DocumenterTest.Root/first",
+						"The first leaf."
+				),
+				out,
+				Documenter.Flavor.LUXEM,
+				"",
+				root,
+				false,
+				report
+		));
+		assertEquals(false, run.result.success);
+		assertEquals(String.format("\n\nDANGLING\n%s\n\n\nDUPLICATE\n", Leaf.class.getTypeName()), run.report);
+		assertTrue(Files.exists(out.resolve("Syntax-Reference.rst")));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void danglingLinkStrict() throws Exception {
+		final Path out = temporaryFolder.newFolder().toPath();
+		capture(report -> Documenter.document(DocumenterTest::walkDangling,
+				descriptions,
+				out,
+				Documenter.Flavor.LUXEM,
+				"",
+				root,
+				true,
+				report
+		));
+	}
+
+	@Test
+	public void localesMatchSingleLocale() throws Exception {
+		final Map<String, String> incomplete = new HashMap<>(descriptions);
+		incomplete.remove("com.zarbosoft.interfacedocument.DocumenterTest.Root/second");
+		incomplete.put("com.zarbosoft.interfacedocument.DocumenterTest.Root/third", "Not a field.");
+		final Map<Locale, Map<String, String>> locales =
+				ImmutableMap.of(Locale.ENGLISH, descriptions, Locale.FRENCH, incomplete);
+
+		final Path out = temporaryFolder.newFolder().toPath();
+		final Run run = capture(report -> Documenter.documentLocales(DocumenterTest::walkFixture,
+				locales,
+				out,
+				Documenter.Flavor.LUXEM,
+				"",
+				root,
+				false,
+				report
+		));
+		assertEquals(false, run.result.success);
+		assertEquals(1, count(run.report, "LOCALE"));
+		assertEquals(1, count(run.report, "LOCALE fr\n\nMISSING\n"));
+		assertEquals(1, count(run.report, "com.zarbosoft.interfacedocument.DocumenterTest.Root/second"));
+		assertEquals(1, count(run.report, "com.zarbosoft.interfacedocument.DocumenterTest.Root/third"));
+		assertEquals(1, count(read(out.resolve("en").resolve("Syntax-Reference.rst")), "The second leaf."));
+		assertEquals(0, count(read(out.resolve("fr").resolve("Syntax-Reference.rst")), "The second leaf."));
+
+		for (final Map.Entry<Locale, Map<String, String>> locale : locales.entrySet()) {
+			final Path single = temporaryFolder.newFolder().toPath();
+			capture(report -> Documenter.document(DocumenterTest::walkFixture,
+					locale.getValue(),
+					single,
+					Documenter.Flavor.LUXEM,
+					"",
+					root,
+					false,
+					report
+			));
+			for (final String name : ImmutableList.of("_Sidebar.rst", "Syntax-Reference.rst")) {
+				final Path localeFile = out.resolve(locale.getKey().toLanguageTag()).resolve(name);
+				assertArrayEquals(name, Files.readAllBytes(single.resolve(name)), Files.readAllBytes(localeFile));
+				assertEquals(name, 0, count(read(localeFile), "data-description"));
+			}
+		}
+	}
+}